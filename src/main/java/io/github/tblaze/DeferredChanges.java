@@ -0,0 +1,108 @@
+package io.github.tblaze;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Holds back changes to a {@link com.jme3.bullet.PhysicsSpace} while it is being updated.
+ * <br><br>
+ * Bullet iterates its collision objects and manifolds during a step, so removing a body or
+ * destroying the space from a contact listener (or from another thread) must wait until the step is over.
+ * Changes are always applied in the order they were requested, one at a time under the same lock
+ * that guards the start of an update.
+ */
+class DeferredChanges {
+
+    private final Object lock = new Object();
+    private final Queue<Runnable> PENDING_CHANGES = new ConcurrentLinkedQueue<>();
+    private boolean updating;
+
+    /**
+     * Marks the start of an update if the condition still holds.
+     * The condition is checked under the lock, so no queued change can run in between.
+     *
+     * @param canUpdate
+     * @return True if the update may go ahead, in which case {@link #endUpdate()} must be called afterwards
+     */
+    boolean beginUpdate(BooleanSupplier canUpdate) {
+        synchronized (lock) {
+            if (updating || !canUpdate.getAsBoolean())
+                return false;
+
+            updating = true;
+            return true;
+        }
+    }
+
+    /**
+     * Marks the end of an update and applies every change queued during it.
+     */
+    void endUpdate() {
+        synchronized (lock) {
+            updating = false;
+        }
+        applyPendingChanges();
+    }
+
+    /**
+     * @return True if an update is running
+     */
+    boolean isUpdating() {
+        synchronized (lock) {
+            return updating;
+        }
+    }
+
+    /**
+     * Runs the change right away, or queues it until the current update has finished.
+     *
+     * @param change
+     */
+    void runOrQueue(Runnable change) {
+        PENDING_CHANGES.add(change);
+        applyPendingChanges();
+    }
+
+    /**
+     * @return Number of changes waiting for the current update to finish
+     */
+    int countPendingChanges() {
+        return PENDING_CHANGES.size();
+    }
+
+    /**
+     * Applies the queued changes unless an update is running.
+     * A change that throws does not stop the ones after it; the first exception is rethrown
+     * once the queue is empty, with any later ones added as suppressed.
+     */
+    private void applyPendingChanges() {
+        RuntimeException failure = null;
+
+        while (true) {
+            synchronized (lock) {
+                if (updating)
+                    break;
+
+                Runnable change = PENDING_CHANGES.poll();
+                if (change == null)
+                    break;
+
+                try {
+                    change.run();
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package io.github.tblaze;
 import com.jme3.bullet.PhysicsSpace;
 import com.jme3.bullet.collision.PersistentManifolds;
 import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.objects.PhysicsRigidBody;
 import io.github.tblaze.entity.PhysicsObject;
 import io.github.tblaze.event.ContactEndedEvent;
 import io.github.tblaze.event.ContactOngoingEvent;
@@ -11,20 +12,34 @@ import net.minestom.server.coordinate.Point;
 import net.minestom.server.entity.Entity;
 import net.minestom.server.event.EventDispatcher;
 import net.minestom.server.instance.Instance;
+import net.minestom.server.timer.Task;
 import net.minestom.server.timer.TaskSchedule;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The main logic for updating the physics continuously.
+ * <br><br>
+ * The handler owns native Bullet memory, so it should be closed once the instance
+ * no longer needs physics (see {@link RigidBodyPhysics#removePhysics(Instance)}).
+ * Objects can be added, removed and the handler closed from any thread, including from contact events
+ * and {@link PhysicsObject#update(float)}. Changes to the {@link PhysicsSpace} requested while it is
+ * being updated are queued and applied once the update has finished.
  */
-public class MinecraftPhysicsHandler {
+public class MinecraftPhysicsHandler implements AutoCloseable {
 
     private static int UPDATABLE_TICK = 1;
 
-    private PhysicsSpace physicsSpace;
+    private static final Map<PhysicsObject, MinecraftPhysicsHandler> OWNER_MAP = new ConcurrentHashMap<>();
+
+    private volatile PhysicsSpace physicsSpace;
     private boolean paused;
+    private volatile boolean closed;
+    private Task updateTask;
+    private final DeferredChanges deferredChanges = new DeferredChanges();
+    private final NativeMemoryTracker nativeMemoryTracker = new NativeMemoryTracker();
 
     // cached
     private long lastRan;
@@ -32,9 +47,10 @@ public class MinecraftPhysicsHandler {
     private float deltaTime;
 
     private final List<PhysicsObject> PHYSICS_OBJECTS = new CopyOnWriteArrayList<>();
-    private final Map<Point, PhysicsObject> POINT_MAP = new HashMap<>();
-    private final Map<Entity, PhysicsObject> ENTITY_MAP = new HashMap<>();
-    private final Map<PhysicsCollisionObject, PhysicsObject> COLLISION_MAP = new HashMap<>();
+    private final Set<PhysicsObject> REMOVED_DURING_UPDATE = ConcurrentHashMap.newKeySet();
+    private final Map<Point, PhysicsObject> POINT_MAP = new ConcurrentHashMap<>();
+    private final Map<Entity, PhysicsObject> ENTITY_MAP = new ConcurrentHashMap<>();
+    private final Map<PhysicsCollisionObject, PhysicsObject> COLLISION_MAP = new ConcurrentHashMap<>();
     private final Instance instance;
 
     public MinecraftPhysicsHandler(Instance instance, boolean listenToContactEnded, boolean listenToContactOngoing, boolean listenToContactStarted) {
@@ -58,10 +74,9 @@ public class MinecraftPhysicsHandler {
                 long idBodyB = PersistentManifolds.getBodyBId(manifoldId);
                 PhysicsCollisionObject objA = PhysicsCollisionObject.findInstance(idBodyA);
                 PhysicsCollisionObject objB = PhysicsCollisionObject.findInstance(idBodyB);
-                if (COLLISION_MAP.containsKey(objA) && COLLISION_MAP.containsKey(objB)) {
-                    PhysicsObject physicsObjectA = COLLISION_MAP.get(objA);
-                    PhysicsObject physicsObjectB = COLLISION_MAP.get(objB);
-
+                PhysicsObject physicsObjectA = getFromCollisionObject(objA);
+                PhysicsObject physicsObjectB = getFromCollisionObject(objB);
+                if (physicsObjectA != null && physicsObjectB != null) {
                     ContactEndedEvent event = new ContactEndedEvent(physicsHandler, physicsObjectA, physicsObjectB);
                     EventDispatcher.call(event);
                 }
@@ -69,10 +84,9 @@ public class MinecraftPhysicsHandler {
 
             @Override
             public void onContactProcessed(PhysicsCollisionObject pcoA, PhysicsCollisionObject pcoB, long pointId) {
-                if (COLLISION_MAP.containsKey(pcoA) && COLLISION_MAP.containsKey(pcoB)) {
-                    PhysicsObject physicsObjectA = COLLISION_MAP.get(pcoA);
-                    PhysicsObject physicsObjectB = COLLISION_MAP.get(pcoB);
-
+                PhysicsObject physicsObjectA = getFromCollisionObject(pcoA);
+                PhysicsObject physicsObjectB = getFromCollisionObject(pcoB);
+                if (physicsObjectA != null && physicsObjectB != null) {
                     ContactOngoingEvent event = new ContactOngoingEvent(physicsHandler, physicsObjectA, physicsObjectB);
                     EventDispatcher.call(event);
                 }
@@ -84,17 +98,18 @@ public class MinecraftPhysicsHandler {
                 long idBodyB = PersistentManifolds.getBodyBId(manifoldId);
                 PhysicsCollisionObject objA = PhysicsCollisionObject.findInstance(idBodyA);
                 PhysicsCollisionObject objB = PhysicsCollisionObject.findInstance(idBodyB);
-                if (COLLISION_MAP.containsKey(objA) && COLLISION_MAP.containsKey(objB)) {
-                    PhysicsObject physicsObjectA = COLLISION_MAP.get(objA);
-                    PhysicsObject physicsObjectB = COLLISION_MAP.get(objB);
-
+                PhysicsObject physicsObjectA = getFromCollisionObject(objA);
+                PhysicsObject physicsObjectB = getFromCollisionObject(objB);
+                if (physicsObjectA != null && physicsObjectB != null) {
                     ContactStartedEvent event = new ContactStartedEvent(physicsHandler, physicsObjectA, physicsObjectB);
                     EventDispatcher.call(event);
                 }
             }
         };
 
-        instance.scheduler().buildTask(() -> {
+        nativeMemoryTracker.trackSpace();
+
+        this.updateTask = instance.scheduler().buildTask(() -> {
             this.diff = System.nanoTime() - this.lastRan;
             this.deltaTime = this.diff / 1_000_000_000f;
 
@@ -106,16 +121,32 @@ public class MinecraftPhysicsHandler {
     }
 
     private void update(float delta) {
-        if (physicsSpace == null)
+        if (!deferredChanges.beginUpdate(() -> !closed && physicsSpace != null))
             return;
 
-        physicsSpace.update(delta);
+        try {
+            physicsSpace.update(delta);
+
+            for (var object : PHYSICS_OBJECTS) {
+                if (closed)
+                    break;
 
-        for (var object : PHYSICS_OBJECTS) {
-            object.update(delta);
+                // the list iterates a snapshot, so skip objects removed by an earlier update in this loop
+                if (REMOVED_DURING_UPDATE.contains(object))
+                    continue;
+
+                object.update(delta);
+            }
+        } finally {
+            REMOVED_DURING_UPDATE.clear();
+            deferredChanges.endUpdate();
         }
     }
 
+    private PhysicsObject getFromCollisionObject(PhysicsCollisionObject object) {
+        return object == null ? null : COLLISION_MAP.get(object);
+    }
+
     /**
      * Checks if {@link PhysicsCollisionObject} is also a {@link PhysicsObject} in Minecraft.
      *
@@ -123,7 +154,7 @@ public class MinecraftPhysicsHandler {
      * @return True if the PhysicsCollisionObject is a PhysicsObject
      */
     public boolean hasMinecraftPhysicsObject(PhysicsCollisionObject object) {
-        return COLLISION_MAP.containsKey(object);
+        return getFromCollisionObject(object) != null;
     }
 
     /**
@@ -152,10 +183,12 @@ public class MinecraftPhysicsHandler {
      *
      * @param point
      * @param physicsObject
+     * @throws IllegalStateException if the handler has been closed
      */
     public void addToInstance(Point point, PhysicsObject physicsObject) {
+        checkNotClosed();
         POINT_MAP.put(point, physicsObject);
-        COLLISION_MAP.put(physicsObject.getRigidBody(), physicsObject);
+        addRigidBody(physicsObject);
     }
 
     /**
@@ -163,38 +196,83 @@ public class MinecraftPhysicsHandler {
      *
      * @param entity
      * @param physicsObject
+     * @throws IllegalStateException if the handler has been closed
      */
     public void addToInstance(Entity entity, PhysicsObject physicsObject) {
+        checkNotClosed();
         ENTITY_MAP.put(entity, physicsObject);
+        addRigidBody(physicsObject);
+    }
+
+    private void addRigidBody(PhysicsObject physicsObject) {
         COLLISION_MAP.put(physicsObject.getRigidBody(), physicsObject);
+        OWNER_MAP.put(physicsObject, this);
+        nativeMemoryTracker.track(physicsObject.getRigidBody());
     }
 
     /**
      * Removes the {@link PhysicsObject} from the specified {@link Point} in the world.
+     * The rigid body is also taken out of the {@link PhysicsSpace}.
      *
      * @param point
      */
     public void removeFromInstance(Point point) {
-        if (POINT_MAP.containsKey(point)) {
-            PhysicsObject physicsObject = POINT_MAP.get(point);
-            POINT_MAP.remove(point);
-            COLLISION_MAP.remove(physicsObject.getRigidBody());
+        PhysicsObject physicsObject = POINT_MAP.remove(point);
+        if (physicsObject != null) {
+            removeRigidBody(physicsObject);
         }
     }
 
     /**
      * Removes the {@link PhysicsObject} from the {@link Entity}.
+     * The rigid body is also taken out of the {@link PhysicsSpace}.
      *
      * @param entity
      */
     public void removeFromInstance(Entity entity) {
-        if (ENTITY_MAP.containsKey(entity)) {
-            PhysicsObject physicsObject = ENTITY_MAP.get(entity);
-            ENTITY_MAP.remove(entity);
-            COLLISION_MAP.remove(physicsObject.getRigidBody());
+        PhysicsObject physicsObject = ENTITY_MAP.remove(entity);
+        if (physicsObject != null) {
+            removeRigidBody(physicsObject);
         }
     }
 
+    /**
+     * Removes the {@link PhysicsObject} from the handler no matter how it was added,
+     * taking its rigid body out of the {@link PhysicsSpace}.
+     *
+     * @param physicsObject
+     */
+    public void remove(PhysicsObject physicsObject) {
+        POINT_MAP.values().removeIf(object -> object == physicsObject);
+        ENTITY_MAP.values().removeIf(object -> object == physicsObject);
+        removeRigidBody(physicsObject);
+    }
+
+    private void removeRigidBody(PhysicsObject physicsObject) {
+        PhysicsRigidBody rigidBody = physicsObject.getRigidBody();
+        COLLISION_MAP.remove(rigidBody, physicsObject);
+        removeUpdatablePhysicsObject(physicsObject);
+        OWNER_MAP.remove(physicsObject, this);
+
+        deferredChanges.runOrQueue(() -> {
+            PhysicsSpace space = physicsSpace;
+            if (space != null && space.contains(rigidBody)) {
+                space.removeCollisionObject(rigidBody);
+            }
+            nativeMemoryTracker.untrack(rigidBody);
+        });
+    }
+
+    /**
+     * Finds the {@link MinecraftPhysicsHandler} the {@link PhysicsObject} was added to.
+     *
+     * @param physicsObject
+     * @return MinecraftPhysicsHandler object, or null if the PhysicsObject is not in any handler
+     */
+    public static MinecraftPhysicsHandler findOwner(PhysicsObject physicsObject) {
+        return OWNER_MAP.get(physicsObject);
+    }
+
     /**
      * Checks if the {@link PhysicsObject} exists in the specific {@link Point}.
      *
@@ -215,6 +293,9 @@ public class MinecraftPhysicsHandler {
         return ENTITY_MAP.containsKey(entity);
     }
 
+    /**
+     * @return PhysicsSpace object, or null once the handler has been closed
+     */
     public PhysicsSpace getPhysicsSpace() {
         return physicsSpace;
     }
@@ -223,9 +304,13 @@ public class MinecraftPhysicsHandler {
      * Makes the {@link PhysicsObject} updatable every {@value UPDATABLE_TICK} tick.
      *
      * @param physicsObject
+     * @throws IllegalStateException if the handler has been closed
      */
     public void addUpdatablePhysicsObject(PhysicsObject physicsObject) {
+        checkNotClosed();
+        REMOVED_DURING_UPDATE.remove(physicsObject);
         PHYSICS_OBJECTS.add(physicsObject);
+        OWNER_MAP.put(physicsObject, this);
     }
 
     /**
@@ -234,7 +319,12 @@ public class MinecraftPhysicsHandler {
      * @param physicsObject
      */
     public void removeUpdatablePhysicsObject(PhysicsObject physicsObject) {
-        PHYSICS_OBJECTS.remove(physicsObject);
+        if (PHYSICS_OBJECTS.remove(physicsObject) && deferredChanges.isUpdating()) {
+            REMOVED_DURING_UPDATE.add(physicsObject);
+        }
+        if (COLLISION_MAP.get(physicsObject.getRigidBody()) != physicsObject) {
+            OWNER_MAP.remove(physicsObject, this);
+        }
     }
 
     /**
@@ -255,4 +345,76 @@ public class MinecraftPhysicsHandler {
         return instance;
     }
 
+    /**
+     * @return NativeMemoryTracker counting the native objects owned by this handler
+     */
+    public NativeMemoryTracker getNativeMemoryTracker() {
+        return nativeMemoryTracker;
+    }
+
+    /**
+     * Creates a report of the live and unfreed native objects. While the handler is open, it also lists
+     * the rigid bodies in the {@link PhysicsSpace} that were never added through this handler,
+     * and the rigid bodies that were added but are not in the space.
+     *
+     * @return Leak report
+     */
+    public String createLeakReport() {
+        return nativeMemoryTracker.createLeakReport(physicsSpace);
+    }
+
+    /**
+     * @return True if the handler has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the physics and lets go of the native objects behind it.
+     * The update task is cancelled, every rigid body is removed from the {@link PhysicsSpace},
+     * and then the space is destroyed. If an update is running, the teardown happens once it has finished.
+     * <br><br>
+     * Libbulletjme only frees native memory after the Java objects become unreachable and are garbage collected,
+     * so the memory is not released until the {@link PhysicsObject}s holding the rigid bodies are gone as well.
+     * Until then the objects are reported as unfreed by the {@link NativeMemoryTracker}.
+     * Calling this more than once does nothing.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+
+        updateTask.cancel();
+        updateTask = null;
+
+        POINT_MAP.clear();
+        ENTITY_MAP.clear();
+        for (var physicsObject : new ArrayList<>(COLLISION_MAP.values())) {
+            removeRigidBody(physicsObject);
+        }
+        for (var physicsObject : new ArrayList<>(PHYSICS_OBJECTS)) {
+            removeUpdatablePhysicsObject(physicsObject);
+        }
+
+        deferredChanges.runOrQueue(() -> {
+            PhysicsSpace space = physicsSpace;
+            try {
+                space.destroy();
+            } finally {
+                physicsSpace = null;
+                nativeMemoryTracker.releaseSpace(space);
+            }
+        });
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The physics handler for this instance has been closed.");
+        }
+    }
+
 }
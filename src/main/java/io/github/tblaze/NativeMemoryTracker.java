@@ -0,0 +1,352 @@
+package io.github.tblaze;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.CompoundCollisionShape;
+import com.jme3.bullet.collision.shapes.HullCollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps count of the native objects a {@link MinecraftPhysicsHandler} is holding on to.
+ * <br><br>
+ * Libbulletjme only frees the native side of an object after its Java object has been garbage collected.
+ * Objects the handler has let go of are therefore still counted as unfreed until that happens,
+ * and closed handlers stay listed in {@link #getClosedTrackers()} until all of their objects are gone.
+ * <br><br>
+ * The byte counts are only an estimate of the Bullet allocations behind each object,
+ * meant to spot leaks rather than to measure exact memory usage.
+ */
+public class NativeMemoryTracker {
+
+    // The sizes below are worked out from Bullet's class layouts for the single-precision ("Sp")
+    // 64-bit build that RigidBodyPhysics#init loads. They have not been measured with sizeof.
+
+    // btDefaultCollisionConfiguration pre-allocates pools for 4096 btPersistentManifolds (~850 bytes each)
+    // and 4096 collision algorithms (~150 bytes each), about 4 MiB assuming Libbulletjme keeps Bullet's default
+    // pool sizes; the btDiscreteDynamicsWorld, btDbvtBroadphase, dispatcher and solver add tens of KiB on top
+    static final long SPACE_BYTES = 4L * 1024 * 1024 + 64 * 1024;
+    // btRigidBody (~600 bytes with its btCollisionObject base) plus Libbulletjme's jmeMotionState, rounded up
+    static final long RIGID_BODY_BYTES = 768;
+    // a primitive btConvexInternalShape such as btBoxShape, rounded up
+    private static final long SHAPE_BYTES = 128;
+    // one btVector3 (4 floats) per point stored by btConvexHullShape
+    private static final long HULL_VERTEX_BYTES = 16;
+    // btCompoundShapeChild (btTransform + pointers, 88 bytes) plus its btDbvtNode in the compound's AABB tree (56 bytes)
+    private static final long COMPOUND_CHILD_BYTES = 144;
+
+    private static final Set<NativeMemoryTracker> CLOSED_TRACKERS = ConcurrentHashMap.newKeySet();
+
+    private final Map<Object, Object> BODY_MAP = new IdentityHashMap<>();
+    private final Map<Object, TrackedShape> SHAPE_MAP = new IdentityHashMap<>();
+    private final Set<UnfreedObject> UNFREED_OBJECTS = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ReferenceQueue<Object> collectedObjects = new ReferenceQueue<>();
+
+    private boolean spaceLive;
+    private boolean closed;
+    private long liveBytes;
+    private long unfreedBytes;
+
+    NativeMemoryTracker() {
+
+    }
+
+    /**
+     * Counts the {@link PhysicsSpace} owned by the handler.
+     */
+    synchronized void trackSpace() {
+        if (spaceLive || closed)
+            return;
+
+        spaceLive = true;
+        liveBytes += SPACE_BYTES;
+    }
+
+    /**
+     * Marks the {@link PhysicsSpace} as destroyed. It keeps counting as unfreed until it is garbage collected,
+     * and the tracker stays in {@link #getClosedTrackers()} until everything it let go of has been collected.
+     *
+     * @param physicsSpace
+     */
+    void releaseSpace(Object physicsSpace) {
+        synchronized (this) {
+            if (!spaceLive)
+                return;
+
+            spaceLive = false;
+            closed = true;
+            liveBytes -= SPACE_BYTES;
+            addUnfreed(physicsSpace, "space", SPACE_BYTES);
+        }
+
+        // pruned outside this tracker's lock so two handlers closing at once cannot deadlock
+        CLOSED_TRACKERS.removeIf(tracker -> tracker.countUnfreedObjects() == 0);
+        CLOSED_TRACKERS.add(this);
+    }
+
+    /**
+     * Starts tracking the {@link PhysicsRigidBody} and its {@link CollisionShape}.
+     * Shapes shared between bodies are only counted once.
+     *
+     * @param rigidBody
+     */
+    void track(PhysicsRigidBody rigidBody) {
+        CollisionShape shape = rigidBody.getCollisionShape();
+        track(rigidBody, shape, () -> estimateShapeBytes(shape));
+    }
+
+    /**
+     * Starts tracking the body and its shape, estimating the shape's size only the first time it is seen.
+     *
+     * @param body
+     * @param shape
+     * @param shapeBytes
+     */
+    synchronized void track(Object body, Object shape, LongSupplier shapeBytes) {
+        if (BODY_MAP.containsKey(body))
+            return;
+
+        BODY_MAP.put(body, shape);
+        liveBytes += RIGID_BODY_BYTES;
+
+        TrackedShape trackedShape = SHAPE_MAP.get(shape);
+        if (trackedShape == null) {
+            // remember the estimate so untracking subtracts the same amount even if the shape has changed
+            trackedShape = new TrackedShape(shapeBytes.getAsLong());
+            SHAPE_MAP.put(shape, trackedShape);
+            liveBytes += trackedShape.bytes;
+        }
+        trackedShape.references++;
+    }
+
+    /**
+     * Stops tracking the rigid body and releases its shape once no other tracked body uses it.
+     * Both keep counting as unfreed until they are garbage collected.
+     *
+     * @param body
+     */
+    synchronized void untrack(Object body) {
+        // use the shape from tracking time in case the body was given a new one since
+        Object shape = BODY_MAP.remove(body);
+        if (shape == null)
+            return;
+
+        liveBytes -= RIGID_BODY_BYTES;
+        addUnfreed(body, "rigid body", RIGID_BODY_BYTES);
+
+        TrackedShape trackedShape = SHAPE_MAP.get(shape);
+        if (trackedShape == null)
+            return;
+
+        if (--trackedShape.references <= 0) {
+            SHAPE_MAP.remove(shape);
+            liveBytes -= trackedShape.bytes;
+            addUnfreed(shape, "shape", trackedShape.bytes);
+        }
+    }
+
+    /**
+     * @return Number of rigid bodies still tracked
+     */
+    public synchronized int getLiveBodyCount() {
+        return BODY_MAP.size();
+    }
+
+    /**
+     * @return Number of distinct collision shapes still tracked
+     */
+    public synchronized int getLiveShapeCount() {
+        return SHAPE_MAP.size();
+    }
+
+    /**
+     * @return Approximate native bytes held by the space, bodies and shapes still in use
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return Number of objects let go of that have not been garbage collected yet
+     */
+    public synchronized int countUnfreedObjects() {
+        expungeCollected();
+        return UNFREED_OBJECTS.size();
+    }
+
+    /**
+     * @return Approximate native bytes of the objects let go of that have not been garbage collected yet
+     */
+    public synchronized long getUnfreedBytes() {
+        expungeCollected();
+        return unfreedBytes;
+    }
+
+    /**
+     * @return Approximate native bytes still allocated, both live and unfreed
+     */
+    public synchronized long getApproximateBytes() {
+        expungeCollected();
+        return liveBytes + unfreedBytes;
+    }
+
+    /**
+     * @return True if the handler has destroyed its space
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Lists the rigid bodies in the {@link PhysicsSpace} that are not tracked.
+     * These are usually bodies whose {@link io.github.tblaze.entity.PhysicsObject} was removed from the handler
+     * without taking the body out of the space, or bodies added to the space directly.
+     *
+     * @param physicsSpace
+     * @return Rigid bodies in the PhysicsSpace that are not tracked
+     */
+    public synchronized List<PhysicsRigidBody> findUntrackedBodies(PhysicsSpace physicsSpace) {
+        List<PhysicsRigidBody> untracked = new ArrayList<>();
+        for (PhysicsRigidBody rigidBody : physicsSpace.getRigidBodyList()) {
+            if (!BODY_MAP.containsKey(rigidBody)) {
+                untracked.add(rigidBody);
+            }
+        }
+
+        return untracked;
+    }
+
+    /**
+     * Lists the tracked rigid bodies that are not in the {@link PhysicsSpace}.
+     * A body can show up here briefly if it is added to the handler before being added to the space.
+     *
+     * @param physicsSpace
+     * @return Tracked rigid bodies missing from the PhysicsSpace
+     */
+    public synchronized List<PhysicsRigidBody> findMissingBodies(PhysicsSpace physicsSpace) {
+        List<PhysicsRigidBody> missing = new ArrayList<>();
+        for (Object body : BODY_MAP.keySet()) {
+            if (body instanceof PhysicsRigidBody rigidBody && !physicsSpace.contains(rigidBody)) {
+                missing.add(rigidBody);
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Creates a readable summary of the live and unfreed native objects. When the space is given,
+     * it also lists the untracked rigid bodies in it and the tracked rigid bodies missing from it.
+     *
+     * @param physicsSpace The handler's space, or null once the handler has been closed
+     * @return Leak report
+     */
+    public synchronized String createLeakReport(PhysicsSpace physicsSpace) {
+        expungeCollected();
+
+        StringBuilder report = new StringBuilder();
+        report.append(closed ? "Closed" : "Open")
+                .append(" - live rigid bodies: ").append(BODY_MAP.size())
+                .append(", live shapes: ").append(SHAPE_MAP.size())
+                .append(", approximate live bytes: ").append(liveBytes)
+                .append(", unfreed objects: ").append(UNFREED_OBJECTS.size())
+                .append(", approximate unfreed bytes: ").append(unfreedBytes);
+
+        for (UnfreedObject unfreed : UNFREED_OBJECTS) {
+            Object object = unfreed.get();
+            if (object != null) {
+                report.append(System.lineSeparator())
+                        .append("  unfreed ").append(unfreed.kind).append(": ").append(object);
+            }
+        }
+
+        if (physicsSpace == null)
+            return report.toString();
+
+        List<PhysicsRigidBody> untracked = findUntrackedBodies(physicsSpace);
+        List<PhysicsRigidBody> missing = findMissingBodies(physicsSpace);
+        report.append(System.lineSeparator())
+                .append("Untracked bodies in space: ").append(untracked.size())
+                .append(", tracked bodies missing from space: ").append(missing.size());
+
+        for (PhysicsRigidBody rigidBody : untracked) {
+            report.append(System.lineSeparator())
+                    .append("  untracked: ").append(rigidBody)
+                    .append(" with ").append(rigidBody.getCollisionShape());
+        }
+        for (PhysicsRigidBody rigidBody : missing) {
+            report.append(System.lineSeparator())
+                    .append("  missing: ").append(rigidBody)
+                    .append(" with ").append(BODY_MAP.get(rigidBody));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Lists the trackers of closed handlers whose space, bodies or shapes have not been garbage collected yet.
+     * A tracker that stays here long after its handler was closed points to something still referencing them.
+     *
+     * @return NativeMemoryTrackers of closed handlers with unfreed objects
+     */
+    public static List<NativeMemoryTracker> getClosedTrackers() {
+        CLOSED_TRACKERS.removeIf(tracker -> tracker.countUnfreedObjects() == 0);
+        return new ArrayList<>(CLOSED_TRACKERS);
+    }
+
+    private void addUnfreed(Object object, String kind, long bytes) {
+        expungeCollected();
+        UNFREED_OBJECTS.add(new UnfreedObject(object, collectedObjects, kind, bytes));
+        unfreedBytes += bytes;
+    }
+
+    private void expungeCollected() {
+        UnfreedObject unfreed;
+        while ((unfreed = (UnfreedObject) collectedObjects.poll()) != null) {
+            if (UNFREED_OBJECTS.remove(unfreed)) {
+                unfreedBytes -= unfreed.bytes;
+            }
+        }
+    }
+
+    private static long estimateShapeBytes(CollisionShape shape) {
+        long bytes = SHAPE_BYTES;
+        if (shape instanceof HullCollisionShape hull) {
+            bytes += (long) hull.countHullVertices() * HULL_VERTEX_BYTES;
+        } else if (shape instanceof CompoundCollisionShape compound) {
+            bytes += (long) compound.countChildren() * COMPOUND_CHILD_BYTES;
+        }
+
+        return bytes;
+    }
+
+    private static class TrackedShape {
+
+        private final long bytes;
+        private int references;
+
+        private TrackedShape(long bytes) {
+            this.bytes = bytes;
+        }
+
+    }
+
+    private static class UnfreedObject extends WeakReference<Object> {
+
+        private final String kind;
+        private final long bytes;
+
+        private UnfreedObject(Object object, ReferenceQueue<Object> queue, String kind, long bytes) {
+            super(object, queue);
+            this.kind = kind;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
@@ -8,12 +8,12 @@ import net.minestom.server.instance.Instance;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RigidBodyPhysics {
 
-    private static final Map<Instance, MinecraftPhysicsHandler> INSTANCE_PHYSICS_MAP = new HashMap<>();
+    private static final Map<Instance, MinecraftPhysicsHandler> INSTANCE_PHYSICS_MAP = new ConcurrentHashMap<>();
 
     private RigidBodyPhysics() {
 
@@ -40,6 +40,7 @@ public class RigidBodyPhysics {
     /**
      * Creates and integrates custom physics into the instance.
      * The boolean arguments are there to disable any listeners that are not necessary for the particular instance.
+     * If the instance already has physics, the old {@link MinecraftPhysicsHandler} is closed first.
      *
      * @param instance
      * @param listenToContactEnded If true, {@link ContactEndedEvent} will be called
@@ -49,18 +50,25 @@ public class RigidBodyPhysics {
      */
     public static MinecraftPhysicsHandler createPhysics(Instance instance, boolean listenToContactEnded, boolean listenToContactOngoing, boolean listenToContactStarted) {
         var physicsHandler = new MinecraftPhysicsHandler(instance, listenToContactEnded, listenToContactOngoing, listenToContactStarted);
-        INSTANCE_PHYSICS_MAP.put(instance, physicsHandler);
+        MinecraftPhysicsHandler oldPhysicsHandler = INSTANCE_PHYSICS_MAP.put(instance, physicsHandler);
+        if (oldPhysicsHandler != null) {
+            oldPhysicsHandler.close();
+        }
 
         return physicsHandler;
     }
 
     /**
-     * Removes the custom physics from the instance.
+     * Removes the custom physics from the instance and closes its {@link MinecraftPhysicsHandler}.
+     * The native memory is freed by Libbulletjme once the rigid bodies and the space have been garbage collected.
      *
      * @param instance
      */
     public static void removePhysics(Instance instance) {
-        INSTANCE_PHYSICS_MAP.remove(instance);
+        MinecraftPhysicsHandler physicsHandler = INSTANCE_PHYSICS_MAP.remove(instance);
+        if (physicsHandler != null) {
+            physicsHandler.close();
+        }
     }
 
     /**
@@ -1,13 +1,14 @@
 package io.github.tblaze.entity;
 
 import com.jme3.bullet.objects.PhysicsRigidBody;
+import io.github.tblaze.MinecraftPhysicsHandler;
 import net.minestom.server.coordinate.Point;
 import net.minestom.server.instance.Instance;
 
 /**
  * An object with physics attached to it.
  */
-public interface PhysicsObject {
+public interface PhysicsObject extends AutoCloseable {
 
     /**
      * Spawns the object at the specified point.
@@ -29,6 +30,20 @@ public interface PhysicsObject {
      */
     void destroy();
 
+    /**
+     * Removes the object from its {@link MinecraftPhysicsHandler}, taking the rigid body
+     * out of the physics space, and then calls {@link #destroy()}.
+     */
+    @Override
+    default void close() {
+        MinecraftPhysicsHandler physicsHandler = MinecraftPhysicsHandler.findOwner(this);
+        if (physicsHandler != null) {
+            physicsHandler.remove(this);
+        }
+
+        destroy();
+    }
+
     /**
      * @return PhysicsRigidBody object
      */
@@ -0,0 +1,89 @@
+package io.github.tblaze;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeferredChangesTest {
+
+    @Test
+    public void changeRunsRightAwayOutsideAnUpdate() {
+        DeferredChanges changes = new DeferredChanges();
+        List<String> applied = new ArrayList<>();
+
+        changes.runOrQueue(() -> applied.add("remove"));
+
+        assertEquals(List.of("remove"), applied);
+        assertEquals(0, changes.countPendingChanges());
+    }
+
+    @Test
+    public void removalDuringStepWaitsForTheStepToEnd() {
+        DeferredChanges changes = new DeferredChanges();
+        List<String> applied = new ArrayList<>();
+
+        assertTrue(changes.beginUpdate(() -> true));
+        // what a contact listener does when it removes an object mid-step
+        changes.runOrQueue(() -> applied.add("remove"));
+        changes.runOrQueue(() -> applied.add("destroy space"));
+        assertTrue(applied.isEmpty());
+        assertEquals(2, changes.countPendingChanges());
+
+        changes.endUpdate();
+        assertEquals(List.of("remove", "destroy space"), applied);
+        assertEquals(0, changes.countPendingChanges());
+    }
+
+    @Test
+    public void changeFromAnotherThreadWaitsForTheStepToEnd() throws InterruptedException {
+        DeferredChanges changes = new DeferredChanges();
+        List<String> applied = new ArrayList<>();
+
+        assertTrue(changes.beginUpdate(() -> true));
+        Thread thread = new Thread(() -> changes.runOrQueue(() -> applied.add("close")));
+        thread.start();
+        thread.join();
+        assertTrue(applied.isEmpty());
+
+        changes.endUpdate();
+        assertEquals(List.of("close"), applied);
+    }
+
+    @Test
+    public void failingChangeDoesNotStopTheRest() {
+        DeferredChanges changes = new DeferredChanges();
+        List<String> applied = new ArrayList<>();
+
+        assertTrue(changes.beginUpdate(() -> true));
+        changes.runOrQueue(() -> {
+            throw new IllegalStateException("first");
+        });
+        changes.runOrQueue(() -> {
+            throw new IllegalArgumentException("second");
+        });
+        changes.runOrQueue(() -> applied.add("destroy space"));
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, changes::endUpdate);
+        assertEquals("first", thrown.getMessage());
+        assertEquals(1, thrown.getSuppressed().length);
+        assertEquals(List.of("destroy space"), applied);
+        assertEquals(0, changes.countPendingChanges());
+    }
+
+    @Test
+    public void updateDoesNotStartWhenRefusedOrAlreadyRunning() {
+        DeferredChanges changes = new DeferredChanges();
+
+        assertFalse(changes.beginUpdate(() -> false));
+        assertFalse(changes.isUpdating());
+
+        assertTrue(changes.beginUpdate(() -> true));
+        assertFalse(changes.beginUpdate(() -> true));
+        changes.endUpdate();
+        assertFalse(changes.isUpdating());
+    }
+
+}
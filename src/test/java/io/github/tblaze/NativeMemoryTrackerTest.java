@@ -0,0 +1,120 @@
+package io.github.tblaze;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NativeMemoryTrackerTest {
+
+    private static final long SHAPE_BYTES = 1000;
+
+    @Test
+    public void sharedShapeIsCountedOnce() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker();
+        Object shape = new Object();
+        AtomicInteger estimates = new AtomicInteger();
+
+        tracker.track(new Object(), shape, () -> {
+            estimates.incrementAndGet();
+            return SHAPE_BYTES;
+        });
+        tracker.track(new Object(), shape, () -> {
+            estimates.incrementAndGet();
+            return SHAPE_BYTES;
+        });
+
+        assertEquals(2, tracker.getLiveBodyCount());
+        assertEquals(1, tracker.getLiveShapeCount());
+        assertEquals(1, estimates.get());
+        assertEquals(2 * NativeMemoryTracker.RIGID_BODY_BYTES + SHAPE_BYTES, tracker.getLiveBytes());
+    }
+
+    @Test
+    public void shapeIsReleasedWithItsLastBody() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker();
+        Object shape = new Object();
+        Object bodyA = new Object();
+        Object bodyB = new Object();
+        tracker.track(bodyA, shape, () -> SHAPE_BYTES);
+        tracker.track(bodyB, shape, () -> SHAPE_BYTES);
+
+        tracker.untrack(bodyA);
+        assertEquals(1, tracker.getLiveBodyCount());
+        assertEquals(1, tracker.getLiveShapeCount());
+        assertEquals(NativeMemoryTracker.RIGID_BODY_BYTES + SHAPE_BYTES, tracker.getLiveBytes());
+
+        tracker.untrack(bodyB);
+        assertEquals(0, tracker.getLiveBodyCount());
+        assertEquals(0, tracker.getLiveShapeCount());
+        assertEquals(0, tracker.getLiveBytes());
+
+        // still reachable from this test, so not freed yet
+        assertEquals(3, tracker.countUnfreedObjects());
+        assertEquals(2 * NativeMemoryTracker.RIGID_BODY_BYTES + SHAPE_BYTES, tracker.getUnfreedBytes());
+        assertEquals(tracker.getUnfreedBytes(), tracker.getApproximateBytes());
+    }
+
+    @Test
+    public void trackingTwiceOrUntrackingUnknownBodiesChangesNothing() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker();
+        Object body = new Object();
+        tracker.track(body, new Object(), () -> SHAPE_BYTES);
+        tracker.track(body, new Object(), () -> SHAPE_BYTES);
+        tracker.untrack(new Object());
+
+        assertEquals(1, tracker.getLiveBodyCount());
+        assertEquals(1, tracker.getLiveShapeCount());
+        assertEquals(NativeMemoryTracker.RIGID_BODY_BYTES + SHAPE_BYTES, tracker.getLiveBytes());
+        assertEquals(0, tracker.countUnfreedObjects());
+    }
+
+    @Test
+    public void releasedSpaceStaysReportedUntilCollected() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker();
+        Object space = new Object();
+        tracker.trackSpace();
+        assertEquals(NativeMemoryTracker.SPACE_BYTES, tracker.getLiveBytes());
+        assertFalse(tracker.isClosed());
+
+        tracker.releaseSpace(space);
+        assertTrue(tracker.isClosed());
+        assertEquals(0, tracker.getLiveBytes());
+        assertEquals(NativeMemoryTracker.SPACE_BYTES, tracker.getUnfreedBytes());
+        assertTrue(NativeMemoryTracker.getClosedTrackers().contains(tracker));
+        assertTrue(tracker.createLeakReport(null).contains("unfreed space"));
+
+        space = null;
+        awaitCollection(tracker);
+        assertEquals(0, tracker.getApproximateBytes());
+        assertFalse(NativeMemoryTracker.getClosedTrackers().contains(tracker));
+    }
+
+    @Test
+    public void collectedObjectsAreNoLongerUnfreed() {
+        NativeMemoryTracker tracker = new NativeMemoryTracker();
+        Object body = new Object();
+        tracker.track(body, new Object(), () -> SHAPE_BYTES);
+        tracker.untrack(body);
+        assertEquals(2, tracker.countUnfreedObjects());
+
+        body = null;
+        awaitCollection(tracker);
+        assertEquals(0, tracker.getUnfreedBytes());
+    }
+
+    private static void awaitCollection(NativeMemoryTracker tracker) {
+        for (int i = 0; i < 50 && tracker.countUnfreedObjects() > 0; i++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertEquals(0, tracker.countUnfreedObjects());
+    }
+
+}